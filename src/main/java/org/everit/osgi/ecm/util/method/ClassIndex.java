@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lookup structures of a class that are owned by a {@link ResolutionContext}. Every class of a
+ * hierarchy has its own index that holds the declared methods of that class, so the
+ * {@link Method} objects of a super class are shared by all component classes of the context that
+ * extend it. The first lookup in a component class indexes the methods of the whole hierarchy, up
+ * to {@link Object}, by name.
+ */
+final class ClassIndex {
+
+  private final ConcurrentMap<Method, Boolean> accessibleWithoutPrivate =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<Method, Boolean> accessibleWithPrivate =
+      new ConcurrentHashMap<>();
+
+  private final Class<?> clazz;
+
+  /**
+   * The declared methods of the class. Queried by the first call of {@link #declaredMethods()}.
+   */
+  private volatile Method[] declaredMethods;
+
+  private final ConcurrentMap<MethodDescriptor, Object> locatedWithoutPrivate =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<MethodDescriptor, Object> locatedWithPrivate =
+      new ConcurrentHashMap<>();
+
+  /**
+   * The methods that are declared in the class or in any of its super classes, grouped by their
+   * name. The methods of a group are in the same order as they would be found by scanning the
+   * declared methods of the hierarchy class by class.
+   */
+  private volatile Map<String, Method[]> methodsByName;
+
+  private final ClassIndex superClassIndex;
+
+  /**
+   * Constructor.
+   *
+   * @param clazz
+   *          The class.
+   * @param superClassIndex
+   *          The index of the super class or <code>null</code> if the class does not have a super
+   *          class.
+   */
+  ClassIndex(final Class<?> clazz, final ClassIndex superClassIndex) {
+    this.clazz = clazz;
+    this.superClassIndex = superClassIndex;
+  }
+
+  /**
+   * Returns the cache of accessibility verdicts.
+   */
+  ConcurrentMap<Method, Boolean> accessibilityVerdicts(final boolean privateMethodAccepted) {
+    return (privateMethodAccepted) ? accessibleWithPrivate : accessibleWithoutPrivate;
+  }
+
+  /**
+   * Returns the declared methods of the class. The methods are queried only once; concurrent first
+   * calls might query them more than once, but they get equivalent arrays.
+   */
+  Method[] declaredMethods() {
+    Method[] result = declaredMethods;
+    if (result == null) {
+      result = clazz.getDeclaredMethods();
+      declaredMethods = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the cache of locate results.
+   */
+  ConcurrentMap<MethodDescriptor, Object> locateResults(final boolean privateMethodAccepted) {
+    return (privateMethodAccepted) ? locatedWithPrivate : locatedWithoutPrivate;
+  }
+
+  /**
+   * Returns the methods with the specified name that are declared in the class or in any of its
+   * super classes or <code>null</code> if there is no such method. The index is built by the first
+   * call. Concurrent first calls might build the index more than once, but they get equivalent
+   * indexes.
+   */
+  Method[] methodsWithName(final String methodName) {
+    Map<String, Method[]> index = methodsByName;
+    if (index == null) {
+      Map<String, List<Method>> methodListsByName = new HashMap<>();
+      ClassIndex currentClassIndex = this;
+      while (currentClassIndex != null) {
+        for (Method method : currentClassIndex.declaredMethods()) {
+          List<Method> methodList = methodListsByName.get(method.getName());
+          if (methodList == null) {
+            methodList = new ArrayList<>(1);
+            methodListsByName.put(method.getName(), methodList);
+          }
+          methodList.add(method);
+        }
+        currentClassIndex = currentClassIndex.superClassIndex;
+      }
+
+      index = new HashMap<>(methodListsByName.size() * 4 / 3 + 1);
+      for (Entry<String, List<Method>> entry : methodListsByName.entrySet()) {
+        List<Method> methodList = entry.getValue();
+        index.put(entry.getKey(), methodList.toArray(new Method[methodList.size()]));
+      }
+      methodsByName = index;
+    }
+    return index.get(methodName);
+  }
+}
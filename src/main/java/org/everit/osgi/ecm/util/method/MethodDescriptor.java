@@ -59,6 +59,18 @@ public class MethodDescriptor {
     PATTERN_PARAM_TYPE = Pattern.compile(REGEX_PARAM_TYPE);
   }
 
+  /**
+   * Calculates the same hash code as {@link String#hashCode()} of the part of the type name after
+   * the last dot, without creating a substring.
+   */
+  private static int lastNameSegmentHashCode(final String typeName) {
+    int result = 0;
+    for (int i = typeName.lastIndexOf('.') + 1, n = typeName.length(); i < n; i++) {
+      result = 31 * result + typeName.charAt(i);
+    }
+    return result;
+  }
+
   private static String removeWhiteSpacesFromParameterTypeString(final String parameterTypeString) {
 
     StringBuilder sb = new StringBuilder(parameterTypeString.length());
@@ -73,26 +85,37 @@ public class MethodDescriptor {
     return sb.toString();
   }
 
+  /**
+   * Cached hash code. Zero means that it is not calculated yet.
+   */
+  private int hash;
+
   private final String methodName;
 
-  private final String[] parameterTypeNames;
+  /**
+   * The names of the parameter types. In case the descriptor is created from a {@link Method}, the
+   * names are calculated only when they are first needed.
+   */
+  private volatile String[] parameterTypeNames;
+
+  /**
+   * The parameter types if the descriptor is created from a {@link Method}, otherwise
+   * <code>null</code>.
+   */
+  private final Class<?>[] parameterTypes;
 
   /**
    * Create a {@link MethodDescriptor} based on a method object. The parameters types will be listed
-   * with their canonical name.
+   * with their canonical name. The names are resolved only if {@link #toString()},
+   * {@link #getParameterTypeNames()} is called or if the descriptor is compared to a descriptor
+   * that was not created from a {@link Method}.
    *
    * @param method
    *          The method that is converted to a {@link MethodDescriptor}.
    */
   public MethodDescriptor(final Method method) {
     this.methodName = method.getName();
-    Class<?>[] parameterTypes = method.getParameterTypes();
-    this.parameterTypeNames = new String[parameterTypes.length];
-
-    for (int i = 0; i < parameterTypes.length; i++) {
-      Class<?> parameterType = parameterTypes[i];
-      this.parameterTypeNames[i] = parameterType.getCanonicalName();
-    }
+    this.parameterTypes = method.getParameterTypes();
   }
 
   /**
@@ -114,6 +137,7 @@ public class MethodDescriptor {
     }
 
     this.methodName = matcher.group(GROUP_METHOD_NAME);
+    this.parameterTypes = null;
     String parameterTypesString = matcher.group(GROUP_PARAMETER_TYPES);
 
     if (parameterTypesString != null) {
@@ -144,9 +168,10 @@ public class MethodDescriptor {
     Objects.requireNonNull(name, "Name of method must not be null");
 
     this.methodName = name;
+    this.parameterTypes = null;
 
     if (parameterTypeNames != null) {
-      this.parameterTypeNames = new String[parameterTypeNames.length];
+      String[] parameterTypeNamesCopy = new String[parameterTypeNames.length];
       for (int i = 0; i < parameterTypeNames.length; i++) {
         String parameterTypeName = parameterTypeNames[i];
         Objects.requireNonNull(parameterTypeName,
@@ -155,8 +180,9 @@ public class MethodDescriptor {
           throw new IllegalArgumentException("Syntax error in parameter type name: "
               + parameterTypeName);
         }
-        this.parameterTypeNames[i] = parameterTypeNames[i];
+        parameterTypeNamesCopy[i] = parameterTypeNames[i];
       }
+      this.parameterTypeNames = parameterTypeNamesCopy;
     } else {
       this.parameterTypeNames = NO_PARAMETER_TYPES_SPECIFIED;
     }
@@ -178,7 +204,13 @@ public class MethodDescriptor {
     if (!methodName.equals(other.methodName)) {
       return false;
     }
-    if (!Arrays.equals(parameterTypeNames, other.parameterTypeNames)) {
+    if (parameterTypes != null && other.parameterTypes != null) {
+      return Arrays.equals(parameterTypes, other.parameterTypes);
+    }
+    if (parameterCount() != other.parameterCount()) {
+      return false;
+    }
+    if (!Arrays.equals(resolveParameterTypeNames(), other.resolveParameterTypeNames())) {
       return false;
     }
     return true;
@@ -200,25 +232,49 @@ public class MethodDescriptor {
    * @return The clone of the parameterTypeNames array.
    */
   public String[] getParameterTypeNames() {
-    if (parameterTypeNames == NO_PARAMETER_TYPES_SPECIFIED) {
+    String[] resolvedParameterTypeNames = resolveParameterTypeNames();
+    if (resolvedParameterTypeNames == NO_PARAMETER_TYPES_SPECIFIED) {
       return noParameterTypeNamesSpecified();
     }
-    return parameterTypeNames.clone();
+    return resolvedParameterTypeNames.clone();
   }
 
+  /**
+   * The hash code is calculated from the name of the method and the last segment of each parameter
+   * type name (e.g. <code>Map</code> for <code>java.util.Map</code>). Descriptors that are created
+   * from a {@link Method} use {@link Class#getSimpleName()} for this, so their canonical type names
+   * do not have to be resolved and the hash code is still the same as the one of an equal parsed
+   * descriptor. Overloads that differ only in the package of a parameter type have the same hash
+   * code.
+   */
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + methodName.hashCode();
-    result = prime * result + Arrays.hashCode(parameterTypeNames);
+    int result = hash;
+    if (result == 0) {
+      final int prime = 31;
+      result = 1;
+      result = prime * result + methodName.hashCode();
+      result = prime * result + parameterCount();
+      if (parameterTypes != null) {
+        for (Class<?> parameterType : parameterTypes) {
+          result = prime * result + parameterType.getSimpleName().hashCode();
+        }
+      } else if (parameterTypeNames != NO_PARAMETER_TYPES_SPECIFIED) {
+        for (String parameterTypeName : parameterTypeNames) {
+          result = prime * result + lastNameSegmentHashCode(parameterTypeName);
+        }
+      }
+      hash = result;
+    }
     return result;
   }
 
   /**
    * Searching the method in the provided class and in super classes. For more information see
    * {@link #matches(Method)} and
-   * {@link MethodUtil#locateMethodByPreference(Class, boolean, MethodDescriptor...)}.
+   * {@link MethodUtil#locateMethodByPreference(Class, boolean, MethodDescriptor...)}. No lookup
+   * structure is stored by this method; use {@link ResolutionContext#locate(Class, boolean,
+   * MethodDescriptor)} to cache them.
    *
    * @param clazz
    *          The class where the search starts.
@@ -229,21 +285,7 @@ public class MethodDescriptor {
    *           if the clazz parameter is null.
    */
   public Method locate(final Class<?> clazz, final boolean privateMethodAccepted) {
-    Objects.requireNonNull(clazz, "Clazz must not be null");
-
-    Class<?> currentClass = clazz;
-
-    while (currentClass != null) {
-      Method[] declaredMethods = currentClass.getDeclaredMethods();
-      for (Method method : declaredMethods) {
-        if (matches(method)
-            && MethodUtil.isMethodAccessibleFromClass(clazz, method, privateMethodAccepted)) {
-          return method;
-        }
-      }
-      currentClass = currentClass.getSuperclass();
-    }
-    return null;
+    return ResolutionContext.NON_CACHING.locate(clazz, privateMethodAccepted, this);
   }
 
   /**
@@ -261,20 +303,25 @@ public class MethodDescriptor {
     if (!this.methodName.equals(method.getName())) {
       return false;
     }
-    if (parameterTypeNames == NO_PARAMETER_TYPES_SPECIFIED) {
+    if (parameterCount() < 0) {
       return true;
     }
 
-    Class<?>[] parameterTypes = method.getParameterTypes();
+    Class<?>[] methodParameterTypes = method.getParameterTypes();
 
-    if (parameterTypes.length != parameterTypeNames.length) {
+    if (methodParameterTypes.length != parameterCount()) {
       return false;
     }
 
+    if (parameterTypes != null && Arrays.equals(parameterTypes, methodParameterTypes)) {
+      return true;
+    }
+
+    String[] resolvedParameterTypeNames = resolveParameterTypeNames();
     boolean matches = true;
-    for (int i = 0; i < parameterTypeNames.length && matches; i++) {
-      String parameterTypeName = parameterTypeNames[i];
-      Class<?> parameterType = parameterTypes[i];
+    for (int i = 0; i < resolvedParameterTypeNames.length && matches; i++) {
+      String parameterTypeName = resolvedParameterTypeNames[i];
+      Class<?> parameterType = methodParameterTypes[i];
       matches = (parameterTypeName.equals(parameterType.getCanonicalName())
           || (!parameterType.isPrimitive() && parameterTypeName.equals(parameterType
           .getSimpleName())));
@@ -290,6 +337,19 @@ public class MethodDescriptor {
     return NO_PARAMETER_TYPES_SPECIFIED;
   }
 
+  /**
+   * Returns the number of parameters or -1 if the parameters are not specified.
+   */
+  private int parameterCount() {
+    if (parameterTypes != null) {
+      return parameterTypes.length;
+    }
+    if (parameterTypeNames == NO_PARAMETER_TYPES_SPECIFIED) {
+      return -1;
+    }
+    return parameterTypeNames.length;
+  }
+
   private String[] parseParameterTypeNames(final String pParameterTypesString) {
     // Crop the brackets and trim
     String parameterTypesString = pParameterTypesString.substring(1,
@@ -310,6 +370,23 @@ public class MethodDescriptor {
     return parameterTypeStringArray;
   }
 
+  /**
+   * Returns the parameter type names. If the descriptor was created from a {@link Method}, the
+   * names are calculated by the first call. Concurrent first calls might calculate the names more
+   * than once, but they get equal arrays.
+   */
+  private String[] resolveParameterTypeNames() {
+    String[] result = parameterTypeNames;
+    if (result == NO_PARAMETER_TYPES_SPECIFIED && parameterTypes != null) {
+      result = new String[parameterTypes.length];
+      for (int i = 0; i < parameterTypes.length; i++) {
+        result[i] = parameterTypes[i].getCanonicalName();
+      }
+      parameterTypeNames = result;
+    }
+    return result;
+  }
+
   /**
    * Returns the String representation of this {@link MethodDescriptor}. The string representation
    * contains the name of the method and if available, the list of parameter types enclosed with
@@ -323,9 +400,10 @@ public class MethodDescriptor {
   public String toString() {
     StringBuilder sb = new StringBuilder(methodName);
     sb.append("(");
-    if (parameterTypeNames != NO_PARAMETER_TYPES_SPECIFIED) {
-      for (int i = 0, n = parameterTypeNames.length; i < n; i++) {
-        String parameterTypeName = parameterTypeNames[i];
+    String[] resolvedParameterTypeNames = resolveParameterTypeNames();
+    if (resolvedParameterTypeNames != NO_PARAMETER_TYPES_SPECIFIED) {
+      for (int i = 0, n = resolvedParameterTypeNames.length; i < n; i++) {
+        String parameterTypeName = resolvedParameterTypeNames[i];
         sb.append(parameterTypeName);
         if (i < n - 1) {
           sb.append(", ");
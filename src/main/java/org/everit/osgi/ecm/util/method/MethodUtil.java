@@ -88,7 +88,8 @@ public final class MethodUtil {
 
   /**
    * Locates the first method that exists from the definition array. For more information about the
-   * alorithm of the locating algorithm, see {@link MethodDescriptor#locate(Class, boolean)}.
+   * alorithm of the locating algorithm, see {@link MethodDescriptor#locate(Class, boolean)}. No
+   * lookup structure is stored by this method; use a {@link ResolutionContext} to cache them.
    *
    * @param clazz
    *          The class where the search is started. The class and its super classes are checked.
@@ -102,21 +103,8 @@ public final class MethodUtil {
   public static Method locateMethodByPreference(final Class<?> clazz,
       final boolean privateMethodAccepted, final MethodDescriptor... methodDefinitions) {
 
-    Objects.requireNonNull(clazz, "Clazz must not be null");
-    Objects.requireNonNull(methodDefinitions, "At least one method definition must be specified");
-
-    if (methodDefinitions.length == 0) {
-      throw new IllegalArgumentException("At least one method definition must be specified");
-    }
-
-    Method locatedMethod = null;
-    for (int i = 0; i < methodDefinitions.length && locatedMethod == null; i++) {
-      MethodDescriptor methodDefinition = methodDefinitions[i];
-      locatedMethod = methodDefinition.locate(clazz, privateMethodAccepted);
-    }
-
-    return locatedMethod;
-
+    return ResolutionContext.NON_CACHING.locateMethodByPreference(clazz, privateMethodAccepted,
+        methodDefinitions);
   }
 
   private MethodUtil() {
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Owner of every lookup structure that is used to locate methods: the declared methods of the
+ * class hierarchies, the accessibility verdicts and the results of the locate calls. A container
+ * should create one context per bundle or per component registry and close it when the bundle is
+ * stopped or refreshed, so the class loaders of the bundle can be garbage collected.
+ *
+ * <p>
+ * The first lookup in a class indexes all methods of its hierarchy by name, so a lookup checks
+ * only the methods that have the name of the descriptor. Descriptors with a method name that does
+ * not exist in the hierarchy are rejected without storing a result for them.
+ *
+ * <p>
+ * Memory cost: every class of a hierarchy, including {@link Object}, gets one entry that holds
+ * its declared methods, so the {@link Method} objects of shared super classes are stored only once
+ * per context. Each component class additionally holds its name index, that is an array of
+ * references per method name of the hierarchy, one accessibility verdict per checked method and
+ * one result per located descriptor.
+ *
+ * <p>
+ * The context holds strong references to the classes it has seen until it is closed. The static
+ * methods of {@link MethodUtil} and {@link MethodDescriptor#locate(Class, boolean)} use a default
+ * context that does not store anything.
+ */
+public class ResolutionContext implements Closeable {
+
+  /**
+   * The context that is used by the static methods. It does not store any lookup structure, so it
+   * cannot retain any class loader.
+   */
+  static final ResolutionContext NON_CACHING = new ResolutionContext(false);
+
+  private static final Object NOT_FOUND = new Object();
+
+  private final boolean caching;
+
+  /**
+   * The lookup structures of the classes. The reference is dropped when the context is closed, so
+   * an index that is added by a lookup running concurrently with {@link #close()} cannot be
+   * retained by the context.
+   */
+  private volatile ConcurrentMap<Class<?>, ClassIndex> classIndexes;
+
+  private volatile boolean closed = false;
+
+  /**
+   * Creates a new context that stores the lookup structures until it is closed.
+   */
+  public ResolutionContext() {
+    this(true);
+  }
+
+  private ResolutionContext(final boolean caching) {
+    this.caching = caching;
+    if (caching) {
+      this.classIndexes = new ConcurrentHashMap<>();
+    } else {
+      this.classIndexes = null;
+    }
+  }
+
+  /**
+   * Releases all lookup structures that are owned by this context. After calling this method, the
+   * context cannot be used anymore.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    classIndexes = null;
+  }
+
+  private Method findFirstMatching(final Method[] methods, final ClassIndex classIndex,
+      final Class<?> clazz, final boolean privateMethodAccepted,
+      final MethodDescriptor methodDescriptor) {
+
+    for (Method method : methods) {
+      if (methodDescriptor.matches(method)
+          && isMethodAccessibleFromClass(classIndex, clazz, method, privateMethodAccepted)) {
+        return method;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the index of the class or <code>null</code> if this context does not store lookup
+   * structures.
+   */
+  private ClassIndex getClassIndex(final Class<?> clazz) {
+    if (closed) {
+      throw new IllegalStateException("Resolution context is closed");
+    }
+    if (!caching) {
+      return null;
+    }
+    ConcurrentMap<Class<?>, ClassIndex> indexes = classIndexes;
+    if (indexes == null) {
+      throw new IllegalStateException("Resolution context is closed");
+    }
+    return getClassIndex(indexes, clazz);
+  }
+
+  private ClassIndex getClassIndex(final ConcurrentMap<Class<?>, ClassIndex> indexes,
+      final Class<?> clazz) {
+    ClassIndex classIndex = indexes.get(clazz);
+    if (classIndex == null) {
+      Class<?> superClass = clazz.getSuperclass();
+      ClassIndex superClassIndex = (superClass != null) ? getClassIndex(indexes, superClass)
+          : null;
+      classIndex = new ClassIndex(clazz, superClassIndex);
+      ClassIndex existingClassIndex = indexes.putIfAbsent(clazz, classIndex);
+      if (existingClassIndex != null) {
+        classIndex = existingClassIndex;
+      }
+    }
+    return classIndex;
+  }
+
+  /**
+   * Cached variant of {@link MethodUtil#isMethodAccessibleFromClass(Class, Method, boolean)}.
+   *
+   * @param clazz
+   *          The type that must have access to the method.
+   * @param method
+   *          The method that should be accessible from the class.
+   * @param privateMethodAccepted
+   *          Whether a method that is declared in clazz, should be accessible even if it is
+   *          private.
+   * @return Whether the method is accessible from the class or not.
+   * @throws IllegalStateException
+   *           if the context is already closed.
+   */
+  public boolean isMethodAccessibleFromClass(final Class<?> clazz, final Method method,
+      final boolean privateMethodAccepted) {
+    return isMethodAccessibleFromClass(getClassIndex(clazz), clazz, method,
+        privateMethodAccepted);
+  }
+
+  private boolean isMethodAccessibleFromClass(final ClassIndex classIndex, final Class<?> clazz,
+      final Method method, final boolean privateMethodAccepted) {
+
+    if (classIndex == null) {
+      return MethodUtil.isMethodAccessibleFromClass(clazz, method, privateMethodAccepted);
+    }
+
+    ConcurrentMap<Method, Boolean> verdicts = classIndex.accessibilityVerdicts(
+        privateMethodAccepted);
+    Boolean verdict = verdicts.get(method);
+    if (verdict == null) {
+      verdict = MethodUtil.isMethodAccessibleFromClass(clazz, method, privateMethodAccepted);
+      verdicts.putIfAbsent(method, verdict);
+    }
+    return verdict;
+  }
+
+  /**
+   * Searching the method in the provided class and in super classes. For more information see
+   * {@link MethodDescriptor#locate(Class, boolean)}.
+   *
+   * @param clazz
+   *          The class where the search starts.
+   * @param privateMethodAccepted
+   *          Whether to search private methods in the class that is passed in the clazz parameter.
+   * @param methodDescriptor
+   *          The descriptor of the method.
+   * @return The matched method or null if no such method could be found.
+   * @throws NullPointerException
+   *           if the clazz or the methodDescriptor parameter is null.
+   * @throws IllegalStateException
+   *           if the context is already closed.
+   */
+  public Method locate(final Class<?> clazz, final boolean privateMethodAccepted,
+      final MethodDescriptor methodDescriptor) {
+    Objects.requireNonNull(clazz, "Clazz must not be null");
+    Objects.requireNonNull(methodDescriptor, "Method descriptor must not be null");
+
+    return locate(getClassIndex(clazz), clazz, privateMethodAccepted, methodDescriptor);
+  }
+
+  private Method locate(final ClassIndex classIndex, final Class<?> clazz,
+      final boolean privateMethodAccepted, final MethodDescriptor methodDescriptor) {
+
+    if (classIndex == null) {
+      return scan(clazz, privateMethodAccepted, methodDescriptor);
+    }
+
+    Method[] candidates = classIndex.methodsWithName(methodDescriptor.getMethodName());
+    if (candidates == null) {
+      return null;
+    }
+
+    ConcurrentMap<MethodDescriptor, Object> results = classIndex.locateResults(
+        privateMethodAccepted);
+    Object result = results.get(methodDescriptor);
+    if (result == null) {
+      result = findFirstMatching(candidates, classIndex, clazz, privateMethodAccepted,
+          methodDescriptor);
+      if (result == null) {
+        result = NOT_FOUND;
+      }
+      results.putIfAbsent(methodDescriptor, result);
+    }
+    return (result == NOT_FOUND) ? null : (Method) result;
+  }
+
+  /**
+   * Locates the first method that exists from the definition array. For more information see
+   * {@link MethodUtil#locateMethodByPreference(Class, boolean, MethodDescriptor...)}.
+   *
+   * @param clazz
+   *          The class where the search is started. The class and its super classes are checked.
+   * @param privateMethodAccepted
+   *          Whether to accept private method if it is locaed in the class that is specified with
+   *          the clazz parameter or not.
+   * @param methodDefinitions
+   *          The method definitions that are searched in preference order.
+   * @return The found method or {@code null} if no matching method was found.
+   * @throws IllegalStateException
+   *           if the context is already closed.
+   */
+  public Method locateMethodByPreference(final Class<?> clazz,
+      final boolean privateMethodAccepted, final MethodDescriptor... methodDefinitions) {
+
+    Objects.requireNonNull(clazz, "Clazz must not be null");
+    Objects.requireNonNull(methodDefinitions, "At least one method definition must be specified");
+
+    if (methodDefinitions.length == 0) {
+      throw new IllegalArgumentException("At least one method definition must be specified");
+    }
+
+    ClassIndex classIndex = getClassIndex(clazz);
+
+    Method locatedMethod = null;
+    for (int i = 0; i < methodDefinitions.length && locatedMethod == null; i++) {
+      MethodDescriptor methodDefinition = methodDefinitions[i];
+      Objects.requireNonNull(methodDefinition, "Method definition must not be null");
+      locatedMethod = locate(classIndex, clazz, privateMethodAccepted, methodDefinition);
+    }
+
+    return locatedMethod;
+  }
+
+  private Method scan(final Class<?> clazz, final boolean privateMethodAccepted,
+      final MethodDescriptor methodDescriptor) {
+
+    Method result = null;
+    Class<?> currentClass = clazz;
+    while (currentClass != null && result == null) {
+      result = findFirstMatching(currentClass.getDeclaredMethods(), null, clazz,
+          privateMethodAccepted, methodDescriptor);
+      currentClass = currentClass.getSuperclass();
+    }
+    return result;
+  }
+}
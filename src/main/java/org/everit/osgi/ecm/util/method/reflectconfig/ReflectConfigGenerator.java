@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method.reflectconfig;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import org.everit.osgi.ecm.util.method.MethodDescriptor;
+import org.everit.osgi.ecm.util.method.ResolutionContext;
+
+/**
+ * Generates the <code>reflect-config.json</code> file of GraalVM native-image for the methods
+ * that are located by {@link MethodDescriptor}s. Only the methods that win the resolution of
+ * {@link org.everit.osgi.ecm.util.method.MethodUtil#locateMethodByPreference(Class, boolean,
+ * MethodDescriptor...)} are registered, on the class that declares them.
+ *
+ * <p>
+ * The generator can be called from the command line:
+ *
+ * <pre>
+ * java -cp ... org.everit.osgi.ecm.util.method.reflectconfig.ReflectConfigGenerator \
+ *     [--no-private] &lt;inputFile&gt; [&lt;outputFile&gt;]
+ * </pre>
+ *
+ * <p>
+ * Each line of the input file contains the name of a component class and the method descriptors in
+ * preference order, separated by semicolons. Empty lines and lines starting with <code>#</code>
+ * are ignored. Example:
+ *
+ * <pre>
+ * com.example.MyComponent: activate(ComponentContext); activate(Map); activate()
+ * </pre>
+ */
+public class ReflectConfigGenerator implements Closeable {
+
+  private static final String COMMENT_PREFIX = "#";
+
+  private static final String DESCRIPTOR_SEPARATOR = ";";
+
+  private static final String OPTION_NO_PRIVATE = "--no-private";
+
+  private static final String SEPARATOR_CLASS_NAME = ":";
+
+  private static void appendJsonString(final Writer writer, final String value)
+      throws IOException {
+    writer.append('"');
+    for (char c : value.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        writer.append('\\');
+      }
+      writer.append(c);
+    }
+    writer.append('"');
+  }
+
+  private static String getTypeName(final Class<?> type) {
+    if (type.isArray()) {
+      return getTypeName(type.getComponentType()) + "[]";
+    }
+    return type.getName();
+  }
+
+  /**
+   * Command line entry point. See the documentation of the class for the usage. The process exits
+   * with status 1 if the arguments are wrong or if any line of the input file cannot be processed.
+   *
+   * @param args
+   *          The command line arguments.
+   * @throws IOException
+   *           if the input file cannot be read or the output cannot be written.
+   */
+  public static void main(final String[] args) throws IOException {
+    int status = run(args, System.out, System.err);
+    if (status != 0) {
+      System.exit(status);
+    }
+  }
+
+  private static MethodDescriptor[] parseDescriptors(final String descriptorList) {
+    String[] descriptorStrings = descriptorList.split(DESCRIPTOR_SEPARATOR);
+    List<MethodDescriptor> descriptors = new ArrayList<>(descriptorStrings.length);
+    for (String descriptorString : descriptorStrings) {
+      String trimmedDescriptorString = descriptorString.trim();
+      if (!trimmedDescriptorString.isEmpty()) {
+        descriptors.add(new MethodDescriptor(trimmedDescriptorString));
+      }
+    }
+    return descriptors.toArray(new MethodDescriptor[descriptors.size()]);
+  }
+
+  /**
+   * Runs the generator with command line arguments. See the documentation of the class for the
+   * usage.
+   *
+   * @param args
+   *          The command line arguments.
+   * @param out
+   *          The stream where the JSON content is written if no output file is specified.
+   * @param err
+   *          The stream where the errors and warnings are written.
+   * @return The exit status: 0 if every line of the input file could be processed, 1 otherwise.
+   * @throws IOException
+   *           if the input file cannot be read or the output cannot be written.
+   */
+  public static int run(final String[] args, final PrintStream out, final PrintStream err)
+      throws IOException {
+    List<String> arguments = new ArrayList<>();
+    boolean privateMethodAccepted = true;
+    for (String arg : args) {
+      if (OPTION_NO_PRIVATE.equals(arg)) {
+        privateMethodAccepted = false;
+      } else {
+        arguments.add(arg);
+      }
+    }
+
+    if (arguments.isEmpty() || arguments.size() > 2) {
+      err.println("Usage: " + ReflectConfigGenerator.class.getName() + " ["
+          + OPTION_NO_PRIVATE + "] <inputFile> [<outputFile>]");
+      return 1;
+    }
+
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    boolean succeeded;
+
+    try (ReflectConfigGenerator generator = new ReflectConfigGenerator()) {
+      try (Reader reader = Files.newBufferedReader(Paths.get(arguments.get(0)),
+          StandardCharsets.UTF_8)) {
+        succeeded = generator.addComponents(reader, classLoader, privateMethodAccepted, err);
+      }
+
+      if (arguments.size() == 2) {
+        try (Writer writer = Files.newBufferedWriter(Paths.get(arguments.get(1)),
+            StandardCharsets.UTF_8)) {
+          generator.write(writer);
+        }
+      } else {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        generator.write(writer);
+        writer.flush();
+      }
+    }
+
+    return (succeeded) ? 0 : 1;
+  }
+
+  private final Map<Class<?>, Set<Method>> methodsByDeclaringClass = new LinkedHashMap<>();
+
+  private final ResolutionContext resolutionContext = new ResolutionContext();
+
+  /**
+   * Locates the method of a component in the same way as
+   * {@link org.everit.osgi.ecm.util.method.MethodUtil#locateMethodByPreference(Class, boolean,
+   * MethodDescriptor...)} does and registers the winning method, if there is one.
+   *
+   * @param clazz
+   *          The component class.
+   * @param privateMethodAccepted
+   *          Whether to accept private method if it is located in the component class or not.
+   * @param methodDefinitions
+   *          The method definitions in preference order.
+   * @return The registered method or <code>null</code> if no method matched.
+   */
+  public Method addComponent(final Class<?> clazz, final boolean privateMethodAccepted,
+      final MethodDescriptor... methodDefinitions) {
+
+    Method method = resolutionContext.locateMethodByPreference(clazz, privateMethodAccepted,
+        methodDefinitions);
+
+    if (method != null) {
+      Set<Method> methods = methodsByDeclaringClass.get(method.getDeclaringClass());
+      if (methods == null) {
+        methods = new LinkedHashSet<>();
+        methodsByDeclaringClass.put(method.getDeclaringClass(), methods);
+      }
+      methods.add(method);
+    }
+    return method;
+  }
+
+  /**
+   * Adds the components that are listed in the format of the command line input file. Lines that
+   * cannot be processed are reported to the error stream and skipped, so the valid lines are
+   * added in any case.
+   *
+   * @param reader
+   *          The content of the input file.
+   * @param classLoader
+   *          The class loader that is used to load the component classes. The classes are not
+   *          initialized.
+   * @param privateMethodAccepted
+   *          Whether to accept private method if it is located in the component class or not.
+   * @param err
+   *          The stream where the errors and warnings are written.
+   * @return <code>true</code> if every line could be processed, <code>false</code> otherwise. A
+   *         component that does not have any of the listed methods is reported as a warning, but
+   *         it is not an error.
+   * @throws IOException
+   *           if the reader throws an {@link IOException}.
+   */
+  public boolean addComponents(final Reader reader, final ClassLoader classLoader,
+      final boolean privateMethodAccepted, final PrintStream err) throws IOException {
+
+    BufferedReader bufferedReader = new BufferedReader(reader);
+    boolean succeeded = true;
+
+    for (String line = bufferedReader.readLine(); line != null;
+        line = bufferedReader.readLine()) {
+      String trimmedLine = line.trim();
+      if (trimmedLine.isEmpty() || trimmedLine.startsWith(COMMENT_PREFIX)) {
+        continue;
+      }
+
+      int separatorIndex = trimmedLine.indexOf(SEPARATOR_CLASS_NAME);
+      if (separatorIndex < 0) {
+        err.println("Missing '" + SEPARATOR_CLASS_NAME + "' after class name: " + line);
+        succeeded = false;
+        continue;
+      }
+
+      String className = trimmedLine.substring(0, separatorIndex).trim();
+      String descriptorList = trimmedLine.substring(separatorIndex + 1).trim();
+
+      MethodDescriptor[] descriptors;
+      try {
+        descriptors = parseDescriptors(descriptorList);
+      } catch (IllegalArgumentException e) {
+        err.println("Invalid method descriptor in line '" + line + "': " + e.getMessage());
+        succeeded = false;
+        continue;
+      }
+
+      if (descriptors.length == 0) {
+        err.println("No method descriptor specified for class: " + className);
+        succeeded = false;
+        continue;
+      }
+
+      Class<?> clazz;
+      try {
+        clazz = Class.forName(className, false, classLoader);
+      } catch (ClassNotFoundException | LinkageError e) {
+        err.println("Class cannot be loaded: " + className + " (" + e + ")");
+        succeeded = false;
+        continue;
+      }
+
+      if (addComponent(clazz, privateMethodAccepted, descriptors) == null) {
+        err.println("No method found in " + className + " for any of " + descriptorList);
+      }
+    }
+    return succeeded;
+  }
+
+  /**
+   * Releases the lookup structures that were used to locate the methods.
+   */
+  @Override
+  public void close() {
+    resolutionContext.close();
+  }
+
+  /**
+   * Writes the <code>reflect-config.json</code> content with the registered methods.
+   *
+   * @param writer
+   *          The writer that the JSON content is written to. The writer is not closed.
+   * @throws IOException
+   *           if the writer throws an {@link IOException}.
+   */
+  public void write(final Writer writer) throws IOException {
+    Objects.requireNonNull(writer, "Writer must not be null");
+
+    writer.append("[");
+    Iterator<Entry<Class<?>, Set<Method>>> classIterator = methodsByDeclaringClass.entrySet()
+        .iterator();
+    while (classIterator.hasNext()) {
+      Entry<Class<?>, Set<Method>> entry = classIterator.next();
+      writer.append("\n  {\n    \"name\": ");
+      appendJsonString(writer, entry.getKey().getName());
+      writer.append(",\n    \"methods\": [");
+
+      Iterator<Method> methodIterator = entry.getValue().iterator();
+      while (methodIterator.hasNext()) {
+        Method method = methodIterator.next();
+        writer.append("\n      { \"name\": ");
+        appendJsonString(writer, method.getName());
+        writer.append(", \"parameterTypes\": [");
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+          if (i > 0) {
+            writer.append(", ");
+          }
+          appendJsonString(writer, getTypeName(parameterTypes[i]));
+        }
+        writer.append("] }");
+        if (methodIterator.hasNext()) {
+          writer.append(",");
+        }
+      }
+      writer.append("\n    ]\n  }");
+      if (classIterator.hasNext()) {
+        writer.append(",");
+      }
+    }
+    writer.append("\n]\n");
+  }
+}
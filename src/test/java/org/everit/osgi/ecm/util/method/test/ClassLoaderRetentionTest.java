@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import org.everit.osgi.ecm.util.method.MethodDescriptor;
+import org.everit.osgi.ecm.util.method.MethodUtil;
+import org.everit.osgi.ecm.util.method.ResolutionContext;
+import org.everit.osgi.ecm.util.method.reflectconfig.ReflectConfigGenerator;
+import org.everit.osgi.ecm.util.method.test.classes.A;
+import org.everit.osgi.ecm.util.method.test.classes.B;
+import org.everit.osgi.ecm.util.method.test.classes.C;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testing that resolving methods does not keep the class loaders of the components alive after the
+ * owner {@link ResolutionContext} is closed. The component hierarchies are defined in throwaway
+ * class loaders from the bytes of the test classes.
+ */
+public class ClassLoaderRetentionTest {
+
+  /**
+   * Class loader that defines the component classes from bytes and does not delegate to the class
+   * loader of the test.
+   */
+  private static final class ThrowawayClassLoader extends URLClassLoader {
+
+    private final Map<String, byte[]> classBytes;
+
+    ThrowawayClassLoader(final Map<String, byte[]> classBytes) {
+      super(new URL[0], null);
+      this.classBytes = classBytes;
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException {
+      byte[] bytes = classBytes.get(name);
+      if (bytes == null) {
+        throw new ClassNotFoundException(name);
+      }
+      return defineClass(name, bytes, 0, bytes.length);
+    }
+  }
+
+  private static final int CLOSE_RACE_CLASS_COUNT = 100;
+
+  private static final int CLOSE_RACE_ROUNDS = 20;
+
+  private static final int CONCURRENT_LOCATE_THREADS = 4;
+
+  private static final int GC_ATTEMPTS = 20;
+
+  private static final int HIERARCHY_COUNT_FOR_HEAP_REPORT = 500;
+
+  private static final Map<String, byte[]> HIERARCHY_BYTES;
+
+  private static final Logger LOGGER = Logger.getLogger(ClassLoaderRetentionTest.class
+      .getName());
+
+  private static final String[] RESOLVED_DESCRIPTORS = new String[] { "privateC", "publicABC",
+      "protectedB(int[], String[])", "protectedDifferentParams()", "noSuchMethod" };
+
+  static {
+    HIERARCHY_BYTES = new HashMap<>();
+    for (Class<?> clazz : new Class<?>[] { A.class, B.class, C.class }) {
+      HIERARCHY_BYTES.put(clazz.getName(), readClassBytes(clazz));
+    }
+  }
+
+  /**
+   * Checks that the context is closed. This also keeps the context reachable until the class
+   * loaders are checked.
+   */
+  private static void assertClosed(final ResolutionContext context) {
+    try {
+      context.locate(C.class, true, new MethodDescriptor("privateC"));
+      Assert.fail("Context is not closed");
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("Resolution context is closed", e.getMessage());
+    }
+  }
+
+  private static void forceGarbageCollection(final WeakReference<?> reference) {
+    List<byte[]> garbage = new ArrayList<>();
+    for (int i = 0; i < GC_ATTEMPTS && reference.get() != null; i++) {
+      garbage.add(new byte[1024 * 1024]);
+      System.gc();
+      garbage.clear();
+    }
+  }
+
+  private static Class<?> loadComponentClass() {
+    try {
+      return new ThrowawayClassLoader(HIERARCHY_BYTES).loadClass(C.class.getName());
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static List<WeakReference<ClassLoader>> raceCloseWithLocate(
+      final ResolutionContext context) throws InterruptedException {
+
+    final List<Class<?>> classes = new ArrayList<>(CLOSE_RACE_CLASS_COUNT);
+    List<WeakReference<ClassLoader>> classLoaderReferences = new ArrayList<>();
+    for (int i = 0; i < CLOSE_RACE_CLASS_COUNT; i++) {
+      Class<?> clazz = loadComponentClass();
+      classes.add(clazz);
+      classLoaderReferences.add(new WeakReference<>(clazz.getClassLoader()));
+    }
+
+    final MethodDescriptor descriptor = new MethodDescriptor("publicABC");
+    final CountDownLatch locateStarted = new CountDownLatch(CONCURRENT_LOCATE_THREADS);
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < CONCURRENT_LOCATE_THREADS; i++) {
+      final int offset = i * CLOSE_RACE_CLASS_COUNT / CONCURRENT_LOCATE_THREADS;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          locateStarted.countDown();
+          try {
+            for (int j = 0; j < CLOSE_RACE_CLASS_COUNT; j++) {
+              context.locate(classes.get((offset + j) % CLOSE_RACE_CLASS_COUNT), true,
+                  descriptor);
+            }
+          } catch (IllegalStateException e) {
+            // Context is closed
+            return;
+          }
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    locateStarted.await();
+    context.close();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return classLoaderReferences;
+  }
+
+  private static byte[] readClassBytes(final Class<?> clazz) {
+    String resourceName = clazz.getName().replace('.', '/') + ".class";
+    try (InputStream in = clazz.getClassLoader().getResourceAsStream(resourceName)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read = in.read(buffer);
+      while (read >= 0) {
+        out.write(buffer, 0, read);
+        read = in.read(buffer);
+      }
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static void resolveAll(final ResolutionContext context, final Class<?> clazz) {
+    for (String descriptor : RESOLVED_DESCRIPTORS) {
+      context.locate(clazz, true, new MethodDescriptor(descriptor));
+      context.locate(clazz, false, new MethodDescriptor(descriptor));
+    }
+    context.locateMethodByPreference(clazz, true, new MethodDescriptor("noSuchMethod"),
+        new MethodDescriptor("publicAC"));
+  }
+
+  private static int hierarchyDepth(final Class<?> clazz) {
+    int depth = 0;
+    for (Class<?> currentClass = clazz; currentClass != null;
+        currentClass = currentClass.getSuperclass()) {
+      depth++;
+    }
+    return depth;
+  }
+
+  /**
+   * Reports the heap that is retained by one kind of lookup structure. The value depends on the
+   * state of the heap that is left by the previous tests of the JVM, so it is only logged and it is
+   * not checked.
+   */
+  private static void reportRetainedHeap(final String structureName, final long heapBefore,
+      final long heapAfter, final List<Class<?>> classes) {
+    long retainedHeapPerClass = (heapAfter - heapBefore) / classes.size();
+    String report = "Retained heap of " + structureName + ": " + retainedHeapPerClass
+        + " bytes per cached class (" + classes.size() + " component classes, hierarchy depth "
+        + hierarchyDepth(classes.get(0)) + ", " + RESOLVED_DESCRIPTORS.length
+        + " descriptors)";
+    LOGGER.info(report);
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+    long usedHeap = Long.MAX_VALUE;
+    for (int i = 0; i < GC_ATTEMPTS; i++) {
+      System.gc();
+      long currentUsedHeap = memoryMXBean.getHeapMemoryUsage().getUsed();
+      if (currentUsedHeap >= usedHeap) {
+        return currentUsedHeap;
+      }
+      usedHeap = currentUsedHeap;
+    }
+    return usedHeap;
+  }
+
+  private WeakReference<ClassLoader> resolveInClosedContext() {
+    Class<?> clazz = loadComponentClass();
+    Assert.assertNotSame(C.class, clazz);
+
+    try (ResolutionContext context = new ResolutionContext()) {
+      resolveAll(context, clazz);
+      Method method = context.locate(clazz, true, new MethodDescriptor("privateC"));
+      Assert.assertSame(clazz, method.getDeclaringClass());
+    }
+    return new WeakReference<>(clazz.getClassLoader());
+  }
+
+  private WeakReference<ClassLoader> resolveInOpenContext(final ResolutionContext context) {
+    Class<?> clazz = loadComponentClass();
+    resolveAll(context, clazz);
+    return new WeakReference<>(clazz.getClassLoader());
+  }
+
+  private WeakReference<ClassLoader> resolveWithGenerator() throws IOException {
+    Class<?> clazz = loadComponentClass();
+    try (ReflectConfigGenerator generator = new ReflectConfigGenerator()) {
+      Assert.assertNotNull(generator.addComponent(clazz, true, new MethodDescriptor("privateC")));
+    }
+    return new WeakReference<>(clazz.getClassLoader());
+  }
+
+  private WeakReference<ClassLoader> resolveWithStaticMethods() {
+    Class<?> clazz = loadComponentClass();
+    for (String descriptor : RESOLVED_DESCRIPTORS) {
+      new MethodDescriptor(descriptor).locate(clazz, true);
+      MethodUtil.locateMethodByPreference(clazz, false, new MethodDescriptor(descriptor));
+    }
+    Method method = clazz.getDeclaredMethods()[0];
+    new MethodDescriptor(method).locate(clazz, true);
+    return new WeakReference<>(clazz.getClassLoader());
+  }
+
+  @Test
+  public void testClosedContextReleasesClassLoader() {
+    WeakReference<ClassLoader> classLoaderReference = resolveInClosedContext();
+    forceGarbageCollection(classLoaderReference);
+    Assert.assertNull("Class loader is retained after closing the context",
+        classLoaderReference.get());
+  }
+
+  /**
+   * Lookups that run concurrently with {@link ResolutionContext#close()} must not leave any class
+   * index in the closed context.
+   */
+  @Test
+  public void testCloseRacingWithLocate() throws InterruptedException {
+    for (int round = 0; round < CLOSE_RACE_ROUNDS; round++) {
+      ResolutionContext context = new ResolutionContext();
+      List<WeakReference<ClassLoader>> classLoaderReferences = raceCloseWithLocate(context);
+
+      for (WeakReference<ClassLoader> classLoaderReference : classLoaderReferences) {
+        forceGarbageCollection(classLoaderReference);
+        Assert.assertNull("Class loader is retained by a closed context",
+            classLoaderReference.get());
+      }
+      assertClosed(context);
+    }
+  }
+
+  @Test
+  public void testGeneratorReleasesClassLoader() throws IOException {
+    WeakReference<ClassLoader> classLoaderReference = resolveWithGenerator();
+    forceGarbageCollection(classLoaderReference);
+    Assert.assertNull("Class loader is retained by the reflect config generator",
+        classLoaderReference.get());
+  }
+
+  /**
+   * Makes sure that the harness detects retention: an open context must keep the class loader
+   * alive.
+   */
+  @Test
+  public void testOpenContextRetainsClassLoader() {
+    ResolutionContext context = new ResolutionContext();
+    WeakReference<ClassLoader> classLoaderReference = resolveInOpenContext(context);
+    forceGarbageCollection(classLoaderReference);
+    Assert.assertNotNull(classLoaderReference.get());
+
+    context.close();
+    forceGarbageCollection(classLoaderReference);
+    Assert.assertNull("Class loader is retained after closing the context",
+        classLoaderReference.get());
+  }
+
+  /**
+   * Measures the heap that is retained by each kind of lookup structure of a context for each
+   * cached component class. The classes and their reflection data are loaded before the first
+   * measurement and the context is filled in stages, each stage filling only one kind of
+   * structure:
+   * <ol>
+   * <li>the class indexes with the methods of the hierarchy grouped by name, by locating a method
+   * name that does not exist,</li>
+   * <li>the accessibility verdicts of every method in the hierarchy,</li>
+   * <li>the locate results, as every verdict that a locate needs is already cached.</li>
+   * </ol>
+   * The measured values are only logged. The test checks that the cached results are reused and
+   * that the methods of {@link Object} are shared by every component class.
+   */
+  @Test
+  public void testRetainedHeapPerLookupStructure() {
+    List<Class<?>> classes = new ArrayList<>(HIERARCHY_COUNT_FOR_HEAP_REPORT);
+    for (int i = 0; i < HIERARCHY_COUNT_FOR_HEAP_REPORT; i++) {
+      Class<?> clazz = loadComponentClass();
+      for (Class<?> currentClass = clazz; currentClass != null;
+          currentClass = currentClass.getSuperclass()) {
+        currentClass.getDeclaredMethods();
+      }
+      classes.add(clazz);
+    }
+
+    try (ResolutionContext context = new ResolutionContext()) {
+      long heapBefore = usedHeap();
+      MethodDescriptor missingMethod = new MethodDescriptor("noSuchMethod");
+      for (Class<?> clazz : classes) {
+        Assert.assertNull(context.locate(clazz, true, missingMethod));
+      }
+      long heapWithNameIndexes = usedHeap();
+
+      for (Class<?> clazz : classes) {
+        for (Class<?> currentClass = clazz; currentClass != null;
+            currentClass = currentClass.getSuperclass()) {
+          for (Method method : currentClass.getDeclaredMethods()) {
+            context.isMethodAccessibleFromClass(clazz, method, true);
+            context.isMethodAccessibleFromClass(clazz, method, false);
+          }
+        }
+      }
+      long heapWithVerdicts = usedHeap();
+
+      for (Class<?> clazz : classes) {
+        resolveAll(context, clazz);
+      }
+      long heapWithLocateResults = usedHeap();
+
+      Method objectMethod = context.locate(Object.class, false, new MethodDescriptor("hashCode"));
+      MethodDescriptor privateMethod = new MethodDescriptor("privateC");
+      for (Class<?> clazz : classes) {
+        Method method = context.locate(clazz, true, privateMethod);
+        Assert.assertSame(clazz, method.getDeclaringClass());
+        Assert.assertSame(method, context.locate(clazz, true, new MethodDescriptor("privateC")));
+        Assert.assertSame(objectMethod,
+            context.locate(clazz, false, new MethodDescriptor("hashCode")));
+      }
+
+      reportRetainedHeap("class indexes with name indexes", heapBefore, heapWithNameIndexes,
+          classes);
+      reportRetainedHeap("accessibility verdicts", heapWithNameIndexes, heapWithVerdicts,
+          classes);
+      reportRetainedHeap("locate results", heapWithVerdicts, heapWithLocateResults, classes);
+    }
+  }
+
+  @Test
+  public void testStaticMethodsDoNotRetainClassLoader() {
+    WeakReference<ClassLoader> classLoaderReference = resolveWithStaticMethods();
+    forceGarbageCollection(classLoaderReference);
+    Assert.assertNull("Class loader is retained by the static methods",
+        classLoaderReference.get());
+  }
+}
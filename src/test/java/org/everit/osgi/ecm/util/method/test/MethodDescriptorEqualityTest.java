@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method.test;
+
+import java.lang.reflect.Method;
+
+import org.everit.osgi.ecm.util.method.MethodDescriptor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testing equality of descriptors that are created from methods and the ones that are parsed.
+ */
+public class MethodDescriptorEqualityTest {
+
+  private static Method getStringMethod(final String name, final Class<?>... parameterTypes) {
+    try {
+      return String.class.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException | SecurityException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Test
+  public void testHashCodeOfOverloads() {
+    Assert.assertNotEquals(new MethodDescriptor("activate(java.util.Map)").hashCode(),
+        new MethodDescriptor("activate(org.osgi.framework.BundleContext)").hashCode());
+    Assert.assertNotEquals(new MethodDescriptor("indexOf(int)").hashCode(),
+        new MethodDescriptor("indexOf(String)").hashCode());
+
+    MethodDescriptor methodBased = new MethodDescriptor(getStringMethod("indexOf", String.class));
+    MethodDescriptor parsed = new MethodDescriptor("indexOf(java.lang.String)");
+    Assert.assertEquals(methodBased, parsed);
+    Assert.assertEquals(methodBased.hashCode(), parsed.hashCode());
+    Assert.assertNotEquals(methodBased.hashCode(),
+        new MethodDescriptor(getStringMethod("indexOf", int.class)).hashCode());
+  }
+
+  @Test
+  public void testMethodBasedAndParsed() {
+    MethodDescriptor methodBased = new MethodDescriptor(
+        getStringMethod("getChars", int.class, int.class, char[].class, int.class));
+    MethodDescriptor parsed = new MethodDescriptor("getChars(int, int, char[], int)");
+
+    Assert.assertEquals(methodBased, parsed);
+    Assert.assertEquals(parsed, methodBased);
+    Assert.assertEquals(methodBased.hashCode(), parsed.hashCode());
+
+    Assert.assertNotEquals(methodBased, new MethodDescriptor("getChars(int, int, char[], long)"));
+    Assert.assertNotEquals(methodBased, new MethodDescriptor("getChars"));
+  }
+
+  @Test
+  public void testMethodBasedDescriptors() {
+    MethodDescriptor indexOfInt = new MethodDescriptor(getStringMethod("indexOf", int.class));
+
+    Assert.assertEquals(indexOfInt, new MethodDescriptor(getStringMethod("indexOf", int.class)));
+    Assert.assertNotEquals(indexOfInt,
+        new MethodDescriptor(getStringMethod("indexOf", String.class)));
+    Assert.assertArrayEquals(new String[] { "int" }, indexOfInt.getParameterTypeNames());
+    Assert.assertTrue(indexOfInt.matches(getStringMethod("indexOf", int.class)));
+    Assert.assertFalse(indexOfInt.matches(getStringMethod("indexOf", String.class)));
+  }
+}
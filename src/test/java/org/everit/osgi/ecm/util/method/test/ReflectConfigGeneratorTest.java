@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.everit.osgi.ecm.util.method.MethodDescriptor;
+import org.everit.osgi.ecm.util.method.reflectconfig.ReflectConfigGenerator;
+import org.everit.osgi.ecm.util.method.test.classes.B;
+import org.everit.osgi.ecm.util.method.test.classes.C;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testing the generation of GraalVM reflection configuration.
+ */
+public class ReflectConfigGeneratorTest {
+
+  private static final String CLASS_B = B.class.getName();
+
+  private static final String CLASS_C = C.class.getName();
+
+  private static String expectedConfig(final String className, final String methodName) {
+    return "[\n"
+        + "  {\n"
+        + "    \"name\": \"" + className + "\",\n"
+        + "    \"methods\": [\n"
+        + "      { \"name\": \"" + methodName + "\", \"parameterTypes\": [] }\n"
+        + "    ]\n"
+        + "  }\n"
+        + "]\n";
+  }
+
+  private static Path writeInputFile(final String... lines) throws IOException {
+    Path inputFile = Files.createTempFile("reflect-config-input", ".txt");
+    Files.write(inputFile, Arrays.asList(lines), StandardCharsets.UTF_8);
+    return inputFile;
+  }
+
+  @Test
+  public void testAddComponentsSkipsInvalidLines() throws IOException {
+    String input = "# comment\n"
+        + "\n"
+        + CLASS_B + ":\n"
+        + CLASS_C + ": foo(bar baz)\n"
+        + CLASS_C + " privateC\n"
+        + "com.example.NoSuchClass: activate\n"
+        + CLASS_C + ": noSuchMethod\n"
+        + "  " + CLASS_C + ": noSuchMethod; privateC; publicAC\n";
+
+    ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+    StringWriter writer = new StringWriter();
+    boolean succeeded;
+    try (ReflectConfigGenerator generator = new ReflectConfigGenerator()) {
+      succeeded = generator.addComponents(new StringReader(input), getClass().getClassLoader(),
+          true, new PrintStream(errBytes, true, "UTF-8"));
+      generator.write(writer);
+    }
+
+    Assert.assertFalse(succeeded);
+    Assert.assertEquals(expectedConfig(CLASS_C, "privateC"), writer.toString());
+
+    String err = new String(errBytes.toByteArray(), StandardCharsets.UTF_8);
+    Assert.assertTrue(err, err.contains("No method descriptor specified for class: " + CLASS_B));
+    Assert.assertTrue(err, err.contains("Invalid method descriptor in line"));
+    Assert.assertTrue(err, err.contains("Missing ':' after class name"));
+    Assert.assertTrue(err, err.contains("Class cannot be loaded: com.example.NoSuchClass"));
+    Assert.assertTrue(err, err.contains("No method found in " + CLASS_C));
+  }
+
+  @Test
+  public void testOnlyWinningMethodsAreRegistered() throws IOException {
+    StringWriter writer = new StringWriter();
+    try (ReflectConfigGenerator generator = new ReflectConfigGenerator()) {
+      generator.addComponent(C.class, true, new MethodDescriptor("noSuchMethod"),
+          new MethodDescriptor("protectedB(int[], String[])"), new MethodDescriptor("privateC"));
+      generator.addComponent(C.class, false, new MethodDescriptor("privateC"));
+      generator.addComponent(B.class, true, new MethodDescriptor("protectedB"));
+      generator.write(writer);
+    }
+
+    Assert.assertEquals("[\n"
+        + "  {\n"
+        + "    \"name\": \"org.everit.osgi.ecm.util.method.test.classes.B\",\n"
+        + "    \"methods\": [\n"
+        + "      { \"name\": \"protectedB\","
+        + " \"parameterTypes\": [\"int[]\", \"java.lang.String[]\"] }\n"
+        + "    ]\n"
+        + "  }\n"
+        + "]\n", writer.toString());
+  }
+
+  @Test
+  public void testRunWithInvalidLine() throws IOException {
+    Path inputFile = writeInputFile(CLASS_C + ": publicAC", CLASS_B + ":");
+    try {
+      ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+      ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+      int status = ReflectConfigGenerator.run(new String[] { inputFile.toString() },
+          new PrintStream(outBytes, true, "UTF-8"), new PrintStream(errBytes, true, "UTF-8"));
+
+      Assert.assertEquals(1, status);
+      Assert.assertEquals(expectedConfig(CLASS_C, "publicAC"),
+          new String(outBytes.toByteArray(), StandardCharsets.UTF_8));
+    } finally {
+      Files.delete(inputFile);
+    }
+  }
+
+  @Test
+  public void testRunWithOutputFileAndNoPrivate() throws IOException {
+    Path inputFile = writeInputFile("# Component C", CLASS_C + ": privateC; publicAC");
+    Path outputFile = Files.createTempFile("reflect-config", ".json");
+    try {
+      ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+      int status = ReflectConfigGenerator.run(
+          new String[] { "--no-private", inputFile.toString(), outputFile.toString() },
+          new PrintStream(outBytes, true, "UTF-8"), System.err);
+
+      Assert.assertEquals(0, status);
+      Assert.assertEquals(0, outBytes.size());
+      Assert.assertEquals(expectedConfig(CLASS_C, "publicAC"),
+          new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8));
+    } finally {
+      Files.delete(inputFile);
+      Files.delete(outputFile);
+    }
+  }
+
+  @Test
+  public void testRunWithoutArguments() throws IOException {
+    ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+    int status = ReflectConfigGenerator.run(new String[0], System.out,
+        new PrintStream(errBytes, true, "UTF-8"));
+
+    Assert.assertEquals(1, status);
+    Assert.assertTrue(new String(errBytes.toByteArray(), StandardCharsets.UTF_8)
+        .startsWith("Usage: "));
+  }
+}
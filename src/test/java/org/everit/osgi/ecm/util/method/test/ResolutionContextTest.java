@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 Everit Kft. (http://www.everit.org)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.ecm.util.method.test;
+
+import java.lang.reflect.Method;
+
+import org.everit.osgi.ecm.util.method.MethodDescriptor;
+import org.everit.osgi.ecm.util.method.ResolutionContext;
+import org.everit.osgi.ecm.util.method.test.classes.B;
+import org.everit.osgi.ecm.util.method.test.classes.C;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Testing the caching of lookup structures in {@link ResolutionContext}.
+ */
+public class ResolutionContextTest {
+
+  @Test(expected = IllegalStateException.class)
+  public void testClosedContext() {
+    ResolutionContext context = new ResolutionContext();
+    context.close();
+    context.locate(C.class, true, new MethodDescriptor("privateC"));
+  }
+
+  @Test
+  public void testDeclaredMethodsAreSharedBetweenSubclasses() {
+    try (ResolutionContext context = new ResolutionContext()) {
+      Method objectMethodFromB = context.locate(B.class, false, new MethodDescriptor("hashCode"));
+      Method objectMethodFromC = context.locate(C.class, false, new MethodDescriptor("hashCode"));
+      Assert.assertSame(objectMethodFromB, objectMethodFromC);
+
+      Method protectedBFromB = context.locate(B.class, false, new MethodDescriptor("protectedB"));
+      Method protectedBFromC = context.locate(C.class, false, new MethodDescriptor("protectedB"));
+      Assert.assertSame(protectedBFromB, protectedBFromC);
+    }
+  }
+
+  @Test
+  public void testHierarchyOrder() {
+    try (ResolutionContext context = new ResolutionContext()) {
+      Method method = context.locate(C.class, false,
+          new MethodDescriptor("protectedDifferentParams"));
+      Assert.assertEquals("C", method.getDeclaringClass().getSimpleName());
+
+      method = context.locate(C.class, false, new MethodDescriptor("publicABC"));
+      Assert.assertEquals("C", method.getDeclaringClass().getSimpleName());
+
+      method = context.locate(C.class, false, new MethodDescriptor("protectedB"));
+      Assert.assertEquals("B", method.getDeclaringClass().getSimpleName());
+    }
+  }
+
+  @Test
+  public void testLocateMethodByPreference() {
+    try (ResolutionContext context = new ResolutionContext()) {
+      MethodDescriptor[] descriptors = new MethodDescriptor[] {
+          new MethodDescriptor("noSuchMethod"),
+          new MethodDescriptor("protectedDifferentParams()"),
+          new MethodDescriptor("protectedDifferentParams(int)") };
+
+      Method method = context.locateMethodByPreference(C.class, false, descriptors);
+      Assert.assertEquals("A", method.getDeclaringClass().getSimpleName());
+      Assert.assertSame(method, context.locateMethodByPreference(C.class, false, descriptors));
+    }
+  }
+
+  @Test
+  public void testMethodNameFilter() {
+    try (ResolutionContext context = new ResolutionContext()) {
+      Assert.assertNull(context.locate(C.class, true, new MethodDescriptor("noSuchMethod")));
+      Assert.assertNull(context.locate(C.class, true, new MethodDescriptor("publicAC(int)")));
+
+      Method method = context.locate(C.class, true, new MethodDescriptor("hashCode()"));
+      Assert.assertEquals(Object.class, method.getDeclaringClass());
+    }
+  }
+
+  @Test
+  public void testPrivateMethodAcceptedIsCachedSeparately() {
+    try (ResolutionContext context = new ResolutionContext()) {
+      MethodDescriptor descriptor = new MethodDescriptor("privateC");
+      Assert.assertNull(context.locate(C.class, false, descriptor));
+      Assert.assertEquals("privateC", context.locate(C.class, true, descriptor).getName());
+      Assert.assertNull(context.locate(C.class, false, descriptor));
+    }
+  }
+}